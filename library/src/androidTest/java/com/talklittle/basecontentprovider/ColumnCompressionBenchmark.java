@@ -0,0 +1,127 @@
+package com.talklittle.basecontentprovider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.Suppress;
+import android.util.Log;
+
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Compares file size, write throughput and read latency of a JSON TEXT column stored
+ * uncompressed, compressed, and compressed with a dictionary, the same way
+ * {@link BaseContentProvider} writes and reads compressed columns.
+ * Results are logged under the "ColumnCompressionBenchmark" tag.
+ *
+ * Suppressed from the default test run; remove the {@code @Suppress} to run it.
+ */
+@Suppress
+public class ColumnCompressionBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "ColumnCompressionBenchmark";
+    private static final String DATABASE_NAME = "column_compression_benchmark.db";
+
+    private static final int ROW_COUNT = 10000;
+    private static final byte[] DICTIONARY = ("{\"id\":,\"created\":,\"author\":{\"name\":\"\",\"avatar_url\":\"https://\"},"
+            + "\"title\":\"\",\"body\":\"\",\"tags\":[\"\"],\"score\":,\"comments\":[]}").getBytes();
+    private static final String[] WORDS = { "provider", "cursor", "window", "sqlite", "android", "query",
+            "column", "compress", "database", "scroll", "list", "content", "value", "table" };
+
+    public void testUncompressed() {
+        runBenchmark("uncompressed", false, null);
+    }
+
+    public void testCompressed() {
+        runBenchmark("compressed", true, null);
+    }
+
+    public void testCompressedWithDictionary() {
+        runBenchmark("compressed with dictionary", true, DICTIONARY);
+    }
+
+    private void runBenchmark(String label, boolean compress, byte[] dictionary) {
+        Context context = getContext();
+        context.deleteDatabase(DATABASE_NAME);
+        try {
+            SQLiteDatabase db = context.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+            db.execSQL("CREATE TABLE items (_id INTEGER PRIMARY KEY, payload TEXT)");
+            long insertMillis = insertRows(db, compress, dictionary);
+            db.execSQL("VACUUM");
+            long fileBytes = context.getDatabasePath(DATABASE_NAME).length();
+            db.close();
+
+            // Reopen so the reads start with an empty page cache
+            db = context.openOrCreateDatabase(DATABASE_NAME, Context.MODE_PRIVATE, null);
+            long idsOnlyMillis = scan(db, dictionary, false);
+            long payloadMillis = scan(db, dictionary, true);
+            db.close();
+
+            Log.i(TAG, label + ": file " + fileBytes + " bytes, insert " + insertMillis
+                    + "ms, scan ids only " + idsOnlyMillis + "ms, scan payloads " + payloadMillis + "ms");
+        } finally {
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+    private static long insertRows(SQLiteDatabase db, boolean compress, byte[] dictionary) {
+        Random random = new Random(0);
+        long startTime = SystemClock.elapsedRealtime();
+        SQLiteStatement insert = db.compileStatement("INSERT INTO items (payload) VALUES (?)");
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < ROW_COUNT; i++) {
+                String json = createJson(random, i);
+                byte[] compressed = compress ? ColumnCompression.compress(json, dictionary) : null;
+                if (compressed != null) {
+                    insert.bindBlob(1, compressed);
+                } else {
+                    insert.bindString(1, json);
+                }
+                insert.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+        return SystemClock.elapsedRealtime() - startTime;
+    }
+
+    private static long scan(SQLiteDatabase db, byte[] dictionary, boolean readPayload) {
+        long startTime = SystemClock.elapsedRealtime();
+        Cursor c = new DecompressingCursor(db.rawQuery("SELECT _id, payload FROM items", null),
+                Collections.singleton("payload"), dictionary);
+        try {
+            int rows = 0;
+            while (c.moveToNext()) {
+                c.getLong(0);
+                if (readPayload) {
+                    c.getString(1);
+                }
+                rows++;
+            }
+            assertEquals(ROW_COUNT, rows);
+        } finally {
+            c.close();
+        }
+        return SystemClock.elapsedRealtime() - startTime;
+    }
+
+    private static String createJson(Random random, int id) {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 80; i++) {
+            body.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+        }
+        return "{\"id\":" + id + ",\"created\":" + (1600000000000L + id)
+                + ",\"author\":{\"name\":\"user" + random.nextInt(500) + "\",\"avatar_url\":\"https://example.com/"
+                + random.nextInt(500) + ".png\"},\"title\":\"" + WORDS[random.nextInt(WORDS.length)]
+                + "\",\"body\":\"" + body + "\",\"tags\":[\"" + WORDS[random.nextInt(WORDS.length)]
+                + "\"],\"score\":" + random.nextInt(1000) + ",\"comments\":[]}";
+    }
+
+}
@@ -0,0 +1,71 @@
+package com.talklittle.basecontentprovider;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+
+public class ColumnCompressionTest extends TestCase {
+
+    private static final String JSON = "{\"id\":1,\"name\":\"example\",\"tags\":[\"a\",\"b\",\"c\"],"
+            + "\"description\":\"a verbose description that repeats, a verbose description that repeats\"}";
+    private static final byte[] DICTIONARY = "{\"id\":\"name\":\"tags\":[\"description\":\"verbose".getBytes();
+
+    public void testRoundTrip() {
+        byte[] compressed = ColumnCompression.compress(JSON, null);
+        assertNotNull(compressed);
+        assertTrue(compressed.length < JSON.length());
+        assertEquals(JSON, ColumnCompression.decompress(compressed, null));
+    }
+
+    public void testRoundTripWithDictionary() {
+        byte[] compressed = ColumnCompression.compress(JSON, DICTIONARY);
+        assertNotNull(compressed);
+        assertEquals(JSON, ColumnCompression.decompress(compressed, DICTIONARY));
+    }
+
+    public void testRoundTripNonAscii() {
+        String value = "日本語のテキスト、日本語のテキスト、日本語のテキスト";
+        assertEquals(value, ColumnCompression.decompress(ColumnCompression.compress(value, null), null));
+    }
+
+    public void testMissingDictionary() {
+        byte[] compressed = ColumnCompression.compress(JSON, DICTIONARY);
+        try {
+            ColumnCompression.decompress(compressed, null);
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    public void testIncompressibleValue() {
+        assertNull(ColumnCompression.compress("short", null));
+    }
+
+    public void testCursorInflatesCompressedAndPassesThroughText() {
+        MatrixCursor matrixCursor = new MatrixCursor(new String[] { "_id", "payload" });
+        matrixCursor.addRow(new Object[] { 1, ColumnCompression.compress(JSON, DICTIONARY) });
+        matrixCursor.addRow(new Object[] { 2, "legacy text" });
+        matrixCursor.addRow(new Object[] { 3, null });
+
+        Cursor c = new DecompressingCursor(matrixCursor, Collections.singleton("payload"), DICTIONARY);
+        try {
+            assertTrue(c.moveToNext());
+            assertEquals(Cursor.FIELD_TYPE_STRING, c.getType(1));
+            assertEquals(JSON, c.getString(1));
+
+            assertTrue(c.moveToNext());
+            assertEquals(Cursor.FIELD_TYPE_STRING, c.getType(1));
+            assertEquals("legacy text", c.getString(1));
+
+            assertTrue(c.moveToNext());
+            assertTrue(c.isNull(1));
+            assertNull(c.getString(1));
+        } finally {
+            c.close();
+        }
+    }
+
+}
@@ -0,0 +1,248 @@
+package com.talklittle.basecontentprovider;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.UriMatcher;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.net.Uri;
+import android.test.AndroidTestCase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+public class CompactionTest extends AndroidTestCase {
+
+    private static final String AUTHORITY = "com.talklittle.basecontentprovider.test";
+    private static final Uri CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/items");
+
+    private static class TestDatabaseHelper extends BaseDatabaseHelper {
+
+        TestDatabaseHelper(Context context) {
+            // In-memory database
+            super(context, null, 1);
+        }
+
+        @Override
+        protected String getCreateTableSql() {
+            return "CREATE TABLE items (_id INTEGER PRIMARY KEY, created INTEGER)";
+        }
+
+        @Override
+        protected String[] getCreateIndexSql() {
+            return new String[] { "CREATE INDEX items_created ON items (created)" };
+        }
+
+        @Override
+        protected String getTableName() {
+            return "items";
+        }
+    }
+
+    private static class TestProvider extends BaseContentProvider {
+
+        RetentionPolicy mRetentionPolicy;
+
+        @Override
+        protected SQLiteOpenHelper getDatabaseHelper(Context context) {
+            return new TestDatabaseHelper(context);
+        }
+
+        @Override
+        protected RetentionPolicy getRetentionPolicy() {
+            return mRetentionPolicy;
+        }
+
+        @Override
+        protected Uri getContentUri() {
+            return CONTENT_URI;
+        }
+
+        @Override
+        protected void setDefaultRequiredColumnValues(ContentValues values, Long now) {
+            if (!values.containsKey("created")) {
+                values.put("created", now);
+            }
+        }
+
+        @Override
+        protected String getItemListContentType() {
+            return "vnd.android.cursor.dir/vnd.test.item";
+        }
+
+        @Override
+        protected String getItemSingleContentType() {
+            return "vnd.android.cursor.item/vnd.test.item";
+        }
+
+        @Override
+        protected int getItemListUriId() {
+            return 1;
+        }
+
+        @Override
+        protected int getItemSingleUriId() {
+            return 2;
+        }
+
+        @Override
+        protected String getDefaultSortOrder() {
+            return "created";
+        }
+
+        @Override
+        protected String getTableName() {
+            return "items";
+        }
+
+        @Override
+        protected UriMatcher createUriMatcher() {
+            UriMatcher uriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
+            uriMatcher.addURI(AUTHORITY, "items", 1);
+            uriMatcher.addURI(AUTHORITY, "items/#", 2);
+            return uriMatcher;
+        }
+
+        @Override
+        protected HashMap<String, String> createProjectionMap() {
+            HashMap<String, String> projectionMap = new HashMap<String, String>();
+            projectionMap.put("_id", "_id");
+            projectionMap.put("created", "created");
+            return projectionMap;
+        }
+
+        @Override
+        protected boolean shouldSyncFor(Uri uri) {
+            return false;
+        }
+
+        void insertRow(long id, long created) {
+            ContentValues values = new ContentValues();
+            values.put("_id", id);
+            values.put("created", created);
+            getWritableDatabase().insertOrThrow("items", null, values);
+        }
+
+        ArrayList<Long> getRemainingIds() {
+            ArrayList<Long> ids = new ArrayList<Long>();
+            Cursor c = getReadableDatabase().rawQuery("SELECT _id FROM items ORDER BY _id", null);
+            try {
+                while (c.moveToNext()) {
+                    ids.add(c.getLong(0));
+                }
+            } finally {
+                c.close();
+            }
+            return ids;
+        }
+
+        long getRowCount() {
+            return DatabaseUtils.queryNumEntries(getReadableDatabase(), "items");
+        }
+    }
+
+    private TestProvider mProvider;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mProvider = new TestProvider();
+        mProvider.attachInfo(getContext(), null);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mProvider.getDatabaseHelper().close();
+        super.tearDown();
+    }
+
+    public void testNoPolicy() {
+        mProvider.insertRow(1, 0);
+        assertEquals(0, mProvider.compact().getDeletedRows());
+        assertEquals(1, mProvider.getRowCount());
+    }
+
+    public void testMaxAge() {
+        long now = System.currentTimeMillis();
+        for (long id = 1; id <= 5; id++) {
+            mProvider.insertRow(id, now - 60000);
+        }
+        for (long id = 6; id <= 8; id++) {
+            mProvider.insertRow(id, now);
+        }
+        mProvider.mRetentionPolicy = new RetentionPolicy("created", 30000, RetentionPolicy.NO_MAX_ROW_COUNT);
+
+        assertEquals(5, mProvider.compact().getDeletedRows());
+        assertEquals("[6, 7, 8]", mProvider.getRemainingIds().toString());
+    }
+
+    public void testNothingExpired() {
+        long now = System.currentTimeMillis();
+        for (long id = 1; id <= 3; id++) {
+            mProvider.insertRow(id, now);
+        }
+        mProvider.mRetentionPolicy = new RetentionPolicy("created", 30000, 3);
+
+        assertEquals(0, mProvider.compact().getDeletedRows());
+        assertEquals(3, mProvider.getRowCount());
+    }
+
+    public void testMaxRowCountWithTiedTimestamps() {
+        // Newest first by (created, _id): 5, 4, 3, 2, 1
+        mProvider.insertRow(1, 100);
+        mProvider.insertRow(2, 200);
+        mProvider.insertRow(3, 200);
+        mProvider.insertRow(4, 200);
+        mProvider.insertRow(5, 300);
+        mProvider.mRetentionPolicy = new RetentionPolicy("created", RetentionPolicy.NO_MAX_AGE, 2);
+
+        assertEquals(3, mProvider.compact().getDeletedRows());
+        assertEquals("[4, 5]", mProvider.getRemainingIds().toString());
+    }
+
+    public void testMaxRowCountZero() {
+        for (long id = 1; id <= 5; id++) {
+            mProvider.insertRow(id, id);
+        }
+        mProvider.mRetentionPolicy = new RetentionPolicy("created", RetentionPolicy.NO_MAX_AGE, 0);
+
+        assertEquals(5, mProvider.compact().getDeletedRows());
+        assertEquals(0, mProvider.getRowCount());
+    }
+
+    public void testMoreThanOneBatch() {
+        long now = System.currentTimeMillis();
+        // Interleave expired and kept rows so batches do not line up with _id ranges
+        for (long id = 1; id <= 150; id++) {
+            mProvider.insertRow(id, id % 3 == 0 ? now : now - 60000);
+        }
+        mProvider.mRetentionPolicy = new RetentionPolicy("created", 30000, RetentionPolicy.NO_MAX_ROW_COUNT,
+                10, RetentionPolicy.DEFAULT_IDLE_DELAY_MILLIS);
+
+        assertEquals(100, mProvider.compact().getDeletedRows());
+        assertEquals(50, mProvider.getRowCount());
+        for (Long id : mProvider.getRemainingIds()) {
+            assertEquals(0, id % 3);
+        }
+    }
+
+    public void testMaxAgeAndMaxRowCountMoreThanOneBatch() {
+        long now = System.currentTimeMillis();
+        for (long id = 1; id <= 40; id++) {
+            mProvider.insertRow(id, now - 60000);
+        }
+        for (long id = 41; id <= 100; id++) {
+            mProvider.insertRow(id, now + id);
+        }
+        mProvider.mRetentionPolicy = new RetentionPolicy("created", 30000, 25,
+                7, RetentionPolicy.DEFAULT_IDLE_DELAY_MILLIS);
+
+        assertEquals(75, mProvider.compact().getDeletedRows());
+        ArrayList<Long> remainingIds = mProvider.getRemainingIds();
+        assertEquals(25, remainingIds.size());
+        assertEquals(Long.valueOf(76), remainingIds.get(0));
+    }
+
+}
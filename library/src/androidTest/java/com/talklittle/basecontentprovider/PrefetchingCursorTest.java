@@ -0,0 +1,178 @@
+package com.talklittle.basecontentprovider;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class PrefetchingCursorTest extends TestCase {
+
+    private static final String SQL = "SELECT _id FROM items ORDER BY _id";
+    private static final int PAGE_SIZE = 10;
+    private static final int MAX_PREFETCHED_PAGES = 2;
+
+    private SQLiteDatabase mDb;
+    private ExecutorService mExecutor;
+    private int mCloseCount;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mDb = SQLiteDatabase.create(null);
+        mDb.execSQL("CREATE TABLE items (_id INTEGER PRIMARY KEY)");
+        mExecutor = Executors.newSingleThreadExecutor();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mExecutor.shutdownNow();
+        mDb.close();
+        super.tearDown();
+    }
+
+    private void insertRows(int count) {
+        for (int id = 1; id <= count; id++) {
+            mDb.execSQL("INSERT INTO items (_id) VALUES (" + id + ")");
+        }
+    }
+
+    private PrefetchingCursor query() {
+        return new PrefetchingCursor(mDb, SQL, null, PAGE_SIZE, MAX_PREFETCHED_PAGES, mExecutor,
+                new PrefetchingCursor.OnCloseListener() {
+                    @Override
+                    public void onClose(PrefetchingCursor cursor) {
+                        mCloseCount++;
+                    }
+                });
+    }
+
+    private void waitForPrefetches() throws Exception {
+        mExecutor.submit(new Callable<Void>() {
+            @Override
+            public Void call() {
+                return null;
+            }
+        }).get();
+    }
+
+    private static ArrayList<Long> readForwards(PrefetchingCursor c) {
+        ArrayList<Long> ids = new ArrayList<Long>();
+        for (c.moveToFirst(); !c.isAfterLast(); c.moveToNext()) {
+            ids.add(c.getLong(0));
+        }
+        return ids;
+    }
+
+    public void testReadsAcrossPages() {
+        insertRows(95);
+        PrefetchingCursor c = query();
+        try {
+            assertEquals(95, c.getCount());
+            ArrayList<Long> ids = readForwards(c);
+            assertEquals(95, ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                assertEquals(Long.valueOf(i + 1), ids.get(i));
+            }
+            assertFalse(c.moveToNext());
+            assertTrue(c.isAfterLast());
+        } finally {
+            c.close();
+        }
+    }
+
+    public void testMovesBackwards() {
+        insertRows(35);
+        PrefetchingCursor c = query();
+        try {
+            assertTrue(c.moveToPosition(25));
+            assertEquals(26, c.getLong(0));
+            assertTrue(c.moveToPosition(3));
+            assertEquals(4, c.getLong(0));
+
+            ArrayList<Long> ids = new ArrayList<Long>();
+            for (c.moveToLast(); !c.isBeforeFirst(); c.moveToPrevious()) {
+                ids.add(c.getLong(0));
+            }
+            assertEquals(35, ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                assertEquals(Long.valueOf(35 - i), ids.get(i));
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    public void testShortPageWhileReading() {
+        insertRows(30);
+        PrefetchingCursor c = query();
+        try {
+            mDb.execSQL("DELETE FROM items WHERE _id>15");
+
+            ArrayList<Long> ids = readForwards(c);
+            assertEquals(15, ids.size());
+            assertEquals(Long.valueOf(15), ids.get(14));
+            assertEquals(15, c.getCount());
+            assertTrue(c.isAfterLast());
+            assertFalse(c.moveToNext());
+            assertTrue(c.isAfterLast());
+        } finally {
+            c.close();
+        }
+    }
+
+    public void testShortPageOnJump() {
+        insertRows(30);
+        PrefetchingCursor c = query();
+        try {
+            mDb.execSQL("DELETE FROM items WHERE _id>15");
+
+            assertFalse(c.moveToPosition(25));
+            assertTrue(c.getCount() < 30);
+            assertTrue(c.isAfterLast());
+            assertFalse(c.moveToNext());
+            assertTrue(c.isAfterLast());
+        } finally {
+            c.close();
+        }
+    }
+
+    public void testCloseTwice() {
+        insertRows(30);
+        PrefetchingCursor c = query();
+        assertTrue(c.moveToPosition(8));
+        c.close();
+        c.close();
+        assertTrue(c.isClosed());
+        assertEquals(1, mCloseCount);
+        assertFalse(c.moveToFirst());
+    }
+
+    public void testPrefetchCounters() throws Exception {
+        insertRows(40);
+        PrefetchingCursor c = query();
+        try {
+            // Past the middle of page 0, so pages 1 and 2 are prefetched
+            assertTrue(c.moveToPosition(PAGE_SIZE / 2));
+            waitForPrefetches();
+            assertTrue(c.moveToPosition(PAGE_SIZE));
+            assertEquals(11, c.getLong(0));
+            assertEquals(1, c.getPrefetchHitCount());
+            assertEquals(0, c.getPrefetchMissCount());
+
+            // Page 3 was never prefetched
+            assertTrue(c.moveToPosition(3 * PAGE_SIZE + 5));
+            assertEquals(36, c.getLong(0));
+            assertEquals(1, c.getPrefetchHitCount());
+            assertEquals(1, c.getPrefetchMissCount());
+            assertTrue(c.getStallNanos() > 0);
+            assertTrue(c.getStallNanosAvoided() > 0);
+        } finally {
+            c.close();
+        }
+    }
+
+}
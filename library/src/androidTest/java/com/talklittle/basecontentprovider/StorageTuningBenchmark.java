@@ -0,0 +1,209 @@
+package com.talklittle.basecontentprovider;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.Suppress;
+import android.util.Log;
+
+import java.util.Random;
+
+/**
+ * Times writes, full scans, indexed range queries and a GROUP BY that needs a temporary b-tree
+ * over the {@link StorageTuning} settings, on a table of about 500MB.
+ * Results are logged under the "StorageTuningBenchmark" tag, one line per combination.
+ *
+ * Takes a long time and needs about 1GB of free space, so it is suppressed from the
+ * default test run. Remove the {@code @Suppress} to run it, and adjust ROW_COUNT and
+ * PAYLOAD_LENGTH to match the table being tuned.
+ */
+@Suppress
+public class StorageTuningBenchmark extends AndroidTestCase {
+
+    private static final String TAG = "StorageTuningBenchmark";
+    private static final String DATABASE_NAME = "storage_tuning_benchmark.db";
+
+    private static final int ROW_COUNT = 500000;
+    private static final int PAYLOAD_LENGTH = 1024;
+    private static final int ROWS_PER_TRANSACTION = 500;
+    private static final int RANGE_QUERY_COUNT = 200;
+    private static final int RANGE_QUERY_LIMIT = 50;
+
+    private static class BenchmarkDatabaseHelper extends BaseDatabaseHelper {
+
+        private final StorageTuning mTuning;
+
+        BenchmarkDatabaseHelper(Context context, StorageTuning tuning) {
+            super(context, DATABASE_NAME, 1);
+            mTuning = tuning;
+        }
+
+        @Override
+        protected String getCreateTableSql() {
+            return "CREATE TABLE items (_id INTEGER PRIMARY KEY, created INTEGER, payload TEXT)";
+        }
+
+        @Override
+        protected String[] getCreateIndexSql() {
+            return new String[] { "CREATE INDEX items_created ON items (created)" };
+        }
+
+        @Override
+        protected String getTableName() {
+            return "items";
+        }
+
+        @Override
+        protected StorageTuning getStorageTuning() {
+            return mTuning;
+        }
+    }
+
+    public void testStorageTuningMatrix() {
+        int[] pageSizes = { 4096, 16384 };
+        StorageTuning.Synchronous[] synchronousModes = { StorageTuning.Synchronous.FULL, StorageTuning.Synchronous.NORMAL };
+        long[] mmapSizes = { 0, 256L * 1024 * 1024 };
+        int[] cacheSizesKib = { 2048, 16384 };
+        StorageTuning.TempStore[] tempStores = { StorageTuning.TempStore.FILE, StorageTuning.TempStore.MEMORY };
+
+        for (int pageSize : pageSizes) {
+            // page_size and synchronous change how the file is written, so build it for each
+            for (StorageTuning.Synchronous synchronous : synchronousModes) {
+                buildDatabase(pageSize, synchronous);
+            }
+
+            // The rest are per-connection read settings, so reuse the last build
+            try {
+                for (long mmapSize : mmapSizes) {
+                    for (int cacheSizeKib : cacheSizesKib) {
+                        for (StorageTuning.TempStore tempStore : tempStores) {
+                            runReads(new StorageTuning()
+                                    .setPageSizeBytes(pageSize)
+                                    .setMmapSizeBytes(mmapSize)
+                                    .setCacheSizeKib(cacheSizeKib)
+                                    .setTempStore(tempStore));
+                        }
+                    }
+                }
+            } finally {
+                getContext().deleteDatabase(DATABASE_NAME);
+            }
+        }
+    }
+
+    private void buildDatabase(int pageSize, StorageTuning.Synchronous synchronous) {
+        getContext().deleteDatabase(DATABASE_NAME);
+        StorageTuning tuning = new StorageTuning()
+                .setPageSizeBytes(pageSize)
+                .setSynchronous(synchronous);
+        BenchmarkDatabaseHelper helper = new BenchmarkDatabaseHelper(getContext(), tuning);
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            assertEquals(pageSize, PragmaUtils.longForPragma(db, "page_size"));
+            long insertMillis = insertRows(db);
+            Log.i(TAG, "page_size=" + pageSize + " synchronous=" + synchronous + ": insert "
+                    + ROW_COUNT + " rows " + insertMillis + "ms, file "
+                    + PragmaUtils.getDatabaseSizeBytes(db) + " bytes");
+        } finally {
+            helper.close();
+        }
+    }
+
+    private void runReads(StorageTuning tuning) {
+        // A fresh helper each time, so the reads start with an empty page cache
+        BenchmarkDatabaseHelper helper = new BenchmarkDatabaseHelper(getContext(), tuning);
+        try {
+            SQLiteDatabase db = helper.getReadableDatabase();
+            long scanMillis = fullScan(db);
+            long rangeMillis = rangeQueries(db);
+            long groupByMillis = groupBy(db);
+            Log.i(TAG, "page_size=" + tuning.getPageSizeBytes() + " mmap_size=" + tuning.getMmapSizeBytes()
+                    + " cache_size=" + tuning.getCacheSizeKib() + "KiB temp_store=" + tuning.getTempStore()
+                    + ": full scan " + scanMillis + "ms, " + RANGE_QUERY_COUNT + " range queries "
+                    + rangeMillis + "ms, group by " + groupByMillis + "ms");
+        } finally {
+            helper.close();
+        }
+    }
+
+    private static long insertRows(SQLiteDatabase db) {
+        Random random = new Random(0);
+        char[] payload = new char[PAYLOAD_LENGTH];
+        long startTime = SystemClock.elapsedRealtime();
+        SQLiteStatement insert = db.compileStatement("INSERT INTO items (created, payload) VALUES (?, ?)");
+        try {
+            for (int i = 0; i < ROW_COUNT; i += ROWS_PER_TRANSACTION) {
+                db.beginTransaction();
+                try {
+                    for (int j = i; j < i + ROWS_PER_TRANSACTION && j < ROW_COUNT; j++) {
+                        for (int k = 0; k < payload.length; k++) {
+                            payload[k] = (char) ('a' + random.nextInt(26));
+                        }
+                        insert.bindLong(1, random.nextInt(ROW_COUNT));
+                        insert.bindString(2, new String(payload));
+                        insert.executeInsert();
+                    }
+                    db.setTransactionSuccessful();
+                } finally {
+                    db.endTransaction();
+                }
+            }
+        } finally {
+            insert.close();
+        }
+        return SystemClock.elapsedRealtime() - startTime;
+    }
+
+    private static long fullScan(SQLiteDatabase db) {
+        long startTime = SystemClock.elapsedRealtime();
+        Cursor c = db.rawQuery("SELECT payload FROM items", null);
+        try {
+            int rows = 0;
+            while (c.moveToNext()) {
+                c.getString(0);
+                rows++;
+            }
+            assertEquals(ROW_COUNT, rows);
+        } finally {
+            c.close();
+        }
+        return SystemClock.elapsedRealtime() - startTime;
+    }
+
+    private static long rangeQueries(SQLiteDatabase db) {
+        Random random = new Random(1);
+        long startTime = SystemClock.elapsedRealtime();
+        for (int i = 0; i < RANGE_QUERY_COUNT; i++) {
+            Cursor c = db.rawQuery("SELECT _id, payload FROM items WHERE created>=? ORDER BY created LIMIT "
+                    + RANGE_QUERY_LIMIT, new String[] { String.valueOf(random.nextInt(ROW_COUNT)) });
+            try {
+                while (c.moveToNext()) {
+                    c.getString(1);
+                }
+            } finally {
+                c.close();
+            }
+        }
+        return SystemClock.elapsedRealtime() - startTime;
+    }
+
+    /**
+     * Grouping on an unindexed expression builds a temporary b-tree, which temp_store places.
+     */
+    private static long groupBy(SQLiteDatabase db) {
+        long startTime = SystemClock.elapsedRealtime();
+        Cursor c = db.rawQuery("SELECT substr(payload, 1, 3), COUNT(*) FROM items GROUP BY substr(payload, 1, 3)", null);
+        try {
+            //noinspection StatementWithEmptyBody
+            while (c.moveToNext()) {
+            }
+        } finally {
+            c.close();
+        }
+        return SystemClock.elapsedRealtime() - startTime;
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.talklittle.basecontentprovider;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+public class StorageTuningTest extends AndroidTestCase {
+
+    private static final String DATABASE_NAME = "storage_tuning_test.db";
+
+    private static class TestDatabaseHelper extends BaseDatabaseHelper {
+
+        private final StorageTuning mTuning;
+
+        TestDatabaseHelper(Context context, StorageTuning tuning) {
+            super(context, DATABASE_NAME, 1);
+            mTuning = tuning;
+        }
+
+        @Override
+        protected String getCreateTableSql() {
+            return "CREATE TABLE items (_id INTEGER PRIMARY KEY, payload TEXT)";
+        }
+
+        @Override
+        protected String getTableName() {
+            return "items";
+        }
+
+        @Override
+        protected StorageTuning getStorageTuning() {
+            return mTuning;
+        }
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        getContext().deleteDatabase(DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        getContext().deleteDatabase(DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testLayoutAppliedOnCreate() {
+        TestDatabaseHelper helper = new TestDatabaseHelper(getContext(), new StorageTuning()
+                .setPageSizeBytes(16384)
+                .setAutoVacuum(StorageTuning.AutoVacuum.INCREMENTAL));
+        try {
+            SQLiteDatabase db = helper.getWritableDatabase();
+            assertEquals(16384, PragmaUtils.longForPragma(db, "page_size"));
+            assertEquals(StorageTuning.AutoVacuum.INCREMENTAL.sqliteValue, PragmaUtils.longForPragma(db, "auto_vacuum"));
+        } finally {
+            helper.close();
+        }
+    }
+
+    public void testMigratingAutoVacuumKeepsPageSize() {
+        TestDatabaseHelper helper = new TestDatabaseHelper(getContext(), new StorageTuning()
+                .setPageSizeBytes(16384));
+        helper.getWritableDatabase();
+        helper.close();
+
+        helper = new TestDatabaseHelper(getContext(), new StorageTuning()
+                .setPageSizeBytes(16384)
+                .setAutoVacuum(StorageTuning.AutoVacuum.INCREMENTAL));
+        try {
+            assertTrue(helper.migrateStorageLayout());
+        } finally {
+            helper.close();
+        }
+
+        helper = new TestDatabaseHelper(getContext(), null);
+        try {
+            SQLiteDatabase db = helper.getReadableDatabase();
+            assertEquals(16384, PragmaUtils.longForPragma(db, "page_size"));
+            assertEquals(StorageTuning.AutoVacuum.INCREMENTAL.sqliteValue, PragmaUtils.longForPragma(db, "auto_vacuum"));
+        } finally {
+            helper.close();
+        }
+    }
+
+    public void testNegativeCacheSizeRejected() {
+        try {
+            new StorageTuning().setCacheSizeKib(-1);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+}
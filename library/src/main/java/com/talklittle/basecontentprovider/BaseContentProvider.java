@@ -9,25 +9,53 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Process;
+import android.os.SystemClock;
 import android.text.TextUtils;
+import android.util.Log;
 
+import com.talklittle.basecontentprovider.ext.QueryParameterUtils;
 import com.talklittle.basecontentprovider.ext.SQLiteContentProvider;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.NonNull;
 
 public abstract class BaseContentProvider extends SQLiteContentProvider {
 
+    private static final String TAG = "BaseContentProvider";
+
     public static final String PARAM_LIMIT = "limit";
+    /**
+     * Set to true to get a {@link PrefetchingCursor}, which loads upcoming rows in the background.
+     */
+    public static final String PARAM_PREFETCH = "prefetch";
+
+    private static final int DEFAULT_PREFETCH_PAGE_SIZE = 200;
+    private static final int DEFAULT_MAX_PREFETCHED_PAGES = 2;
 
     private UriMatcher mUriMatcher;
     private HashMap<String, String> mProjectionMap;
+    private Set<String> mCompressedColumns;
 
     private final ConcurrentHashMap<Uri, Boolean> mUrisToNotify = new ConcurrentHashMap<Uri, Boolean>();
 
+    private final Object mCompactionLock = new Object();
+    private ScheduledExecutorService mCompactionExecutor;
+    private ScheduledFuture<?> mPendingCompaction;
+
+    private ExecutorService mPrefetchExecutor;
+
     @Override
     public Cursor query(@NonNull Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
         SQLiteQueryBuilder qb = new SQLiteQueryBuilder();
@@ -57,7 +85,29 @@ public abstract class BaseContentProvider extends SQLiteContentProvider {
 
         // Get the database and run the query
         SQLiteDatabase db = getReadableDatabase();
-        Cursor c = qb.query(db, projection, selection, selectionArgs, null, null, orderBy, limit);
+        Cursor c;
+        if (QueryParameterUtils.readBooleanQueryParameter(uri, PARAM_PREFETCH, false)) {
+            // Pages are separate queries, so they need a unique order to line up with each other
+            String pagedOrderBy = TextUtils.isEmpty(orderBy) ? "_id" : orderBy + ", _id";
+            String sql = qb.buildQuery(projection, selection, null, null, pagedOrderBy, limit);
+            c = new PrefetchingCursor(db, sql, selectionArgs, getPrefetchPageSize(),
+                    getMaxPrefetchedPages(), getPrefetchExecutor(),
+                    new PrefetchingCursor.OnCloseListener() {
+                        @Override
+                        public void onClose(PrefetchingCursor cursor) {
+                            onPrefetchingCursorClosed(cursor);
+                        }
+                    });
+        }
+        else {
+            c = qb.query(db, projection, selection, selectionArgs, null, null, orderBy, limit);
+        }
+
+        // Only wrap when needed, since a wrapped cursor loses SQLiteCursor's window sharing
+        // with other processes and is copied a cell at a time instead
+        if (containsCompressedColumn(c.getColumnNames())) {
+            c = new DecompressingCursor(c, getCompressedColumns(), getCompressionDictionary());
+        }
 
         // Tell the cursor what uri to watch, so it knows when its source data changes
         //noinspection ConstantConditions
@@ -65,6 +115,40 @@ public abstract class BaseContentProvider extends SQLiteContentProvider {
         return c;
     }
 
+    protected int getPrefetchPageSize() {
+        return DEFAULT_PREFETCH_PAGE_SIZE;
+    }
+
+    protected int getMaxPrefetchedPages() {
+        return DEFAULT_MAX_PREFETCHED_PAGES;
+    }
+
+    /**
+     * Called when a {@link PrefetchingCursor} from {@link #query} is closed,
+     * e.g. to report its hit count and stall time avoided.
+     */
+    @SuppressWarnings("UnusedParameters")
+    protected void onPrefetchingCursorClosed(PrefetchingCursor cursor) {
+    }
+
+    private synchronized ExecutorService getPrefetchExecutor() {
+        if (mPrefetchExecutor == null) {
+            mPrefetchExecutor = Executors.newSingleThreadExecutor(newDaemonThreadFactory(TAG + "-prefetch"));
+        }
+        return mPrefetchExecutor;
+    }
+
+    private static ThreadFactory newDaemonThreadFactory(final String name) {
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(@NonNull Runnable r) {
+                Thread thread = new Thread(r, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
     /**
      * If doing replace, override isReplace() and doReplace().
      */
@@ -84,6 +168,7 @@ public abstract class BaseContentProvider extends SQLiteContentProvider {
 
         Long now = System.currentTimeMillis();
         setDefaultRequiredColumnValues(values, now);
+        compressValues(values);
 
         SQLiteDatabase db = getWritableDatabase();
 
@@ -115,6 +200,9 @@ public abstract class BaseContentProvider extends SQLiteContentProvider {
     /**
      * Do a query if needed to find duplicate record,
      * then conditionally replace() or insert() and return the rowId.
+     *
+     * Values for {@link #createCompressedColumns()} have already been compressed to BLOBs,
+     * so match duplicates on other columns.
      * @return rowId
      */
     @SuppressWarnings("UnusedParameters")
@@ -151,6 +239,11 @@ public abstract class BaseContentProvider extends SQLiteContentProvider {
 
     @Override
     protected int updateInTransaction(@NonNull Uri uri, ContentValues values, String where, String[] whereArgs, boolean callerIsSyncAdapter) {
+        if (!getCompressedColumns().isEmpty()) {
+            values = new ContentValues(values);
+            compressValues(values);
+        }
+
         SQLiteDatabase db = getWritableDatabase();
         int count;
         int matchId = getUriMatcher().match(uri);
@@ -198,6 +291,126 @@ public abstract class BaseContentProvider extends SQLiteContentProvider {
         }
 
         mUrisToNotify.clear();
+
+        scheduleCompaction();
+    }
+
+    /**
+     * Override to expire old rows. Checked after every write, so return a constant.
+     * @return The policy enforced by {@link #compact()}, or null to keep rows forever
+     */
+    protected RetentionPolicy getRetentionPolicy() {
+        return null;
+    }
+
+    /**
+     * Called on the compaction thread after each background {@link #compact()}.
+     */
+    @SuppressWarnings("UnusedParameters")
+    protected void onCompactionFinished(CompactionResult result) {
+    }
+
+    /**
+     * Run {@link #compact()} on a background thread once the provider has gone
+     * {@link RetentionPolicy#getIdleDelayMillis()} without writes.
+     * Each call pushes the pending compaction back.
+     */
+    protected final void scheduleCompaction() {
+        RetentionPolicy policy = getRetentionPolicy();
+        if (policy == null) {
+            return;
+        }
+
+        synchronized (mCompactionLock) {
+            if (mPendingCompaction != null) {
+                mPendingCompaction.cancel(false);
+            }
+            if (mCompactionExecutor == null) {
+                mCompactionExecutor = Executors.newSingleThreadScheduledExecutor(
+                        newDaemonThreadFactory(TAG + "-compaction"));
+            }
+            mPendingCompaction = mCompactionExecutor.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    try {
+                        onCompactionFinished(compact());
+                    } catch (RuntimeException e) {
+                        Log.w(TAG, "Compaction of " + getTableName() + " failed", e);
+                    }
+                }
+            }, policy.getIdleDelayMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Delete rows outside the {@link #getRetentionPolicy()} in small batches,
+     * then return free pages to the filesystem and refresh query planner statistics.
+     * Safe to call directly, e.g. from a periodic job; blocks until done.
+     */
+    public CompactionResult compact() {
+        RetentionPolicy policy = getRetentionPolicy();
+        if (policy == null) {
+            return new CompactionResult(0, 0, 0);
+        }
+
+        long startTime = SystemClock.elapsedRealtime();
+        SQLiteDatabase db = getWritableDatabase();
+        long sizeBefore = PragmaUtils.getDatabaseSizeBytes(db);
+        String tableName = getTableName();
+        String timestampColumn = policy.getTimestampColumn();
+        int batchSize = policy.getBatchSize();
+        int deletedRows = 0;
+
+        // Work out which rows are expired once, up front, so each batch below
+        // only has to find the next expired rows through the timestamp index
+        ArrayList<String> expired = new ArrayList<String>();
+        if (policy.hasMaxAge()) {
+            expired.add(timestampColumn + "<" + (System.currentTimeMillis() - policy.getMaxAgeMillis()));
+        }
+        if (policy.hasMaxRowCount()) {
+            // The newest row beyond the limit; it and everything older is deleted
+            Cursor c = db.rawQuery("SELECT " + timestampColumn + ", _id FROM " + tableName
+                    + " ORDER BY " + timestampColumn + " DESC, _id DESC LIMIT 1 OFFSET "
+                    + policy.getMaxRowCount(), null);
+            try {
+                if (c.moveToFirst()) {
+                    long timestamp = c.getLong(0);
+                    long id = c.getLong(1);
+                    expired.add(timestampColumn + "<" + timestamp
+                            + " OR (" + timestampColumn + "=" + timestamp + " AND _id<=" + id + ")");
+                }
+            } finally {
+                c.close();
+            }
+        }
+
+        if (!expired.isEmpty()) {
+            String where = "_id IN (SELECT _id FROM " + tableName + " WHERE ("
+                    + TextUtils.join(") OR (", expired) + ") LIMIT " + batchSize + ")";
+            int count;
+            do {
+                // Each batch is its own implicit transaction, so the database lock is released
+                // between batches and queued readers and writers get a turn.
+                // SQLiteDatabase serializes this with the provider's own writes.
+                count = db.delete(tableName, where, null);
+                deletedRows += count;
+            } while (count == batchSize);
+        }
+
+        if (PragmaUtils.longForPragma(db, "auto_vacuum") == StorageTuning.AutoVacuum.INCREMENTAL.sqliteValue) {
+            PragmaUtils.execPragma(db, "PRAGMA incremental_vacuum");
+        }
+        // No-op on SQLite versions before 3.18
+        PragmaUtils.execPragma(db, "PRAGMA optimize");
+
+        if (deletedRows > 0) {
+            //noinspection ConstantConditions
+            getContext().getContentResolver().notifyChange(getContentUri(), null, false);
+        }
+
+        long reclaimedBytes = Math.max(0, sizeBefore - PragmaUtils.getDatabaseSizeBytes(db));
+        return new CompactionResult(deletedRows, reclaimedBytes, SystemClock.elapsedRealtime() - startTime);
     }
 
     protected abstract String getItemListContentType();
@@ -224,6 +437,69 @@ public abstract class BaseContentProvider extends SQLiteContentProvider {
 
     protected abstract HashMap<String, String> createProjectionMap();
 
+    protected final Set<String> getCompressedColumns() {
+        if (mCompressedColumns == null)
+            mCompressedColumns = createCompressedColumns();
+        return mCompressedColumns;
+    }
+
+    /**
+     * Override to store large TEXT columns deflated. Values are compressed on insert and update,
+     * and inflated when read from the query cursor, so callers still see plain strings.
+     * Rows written before a column was compressed remain readable.
+     *
+     * Compressed columns cannot be used in selections or sort orders, since the
+     * database only sees the compressed bytes. The same goes for duplicate lookups in
+     * {@link #doReplace(SQLiteDatabase, String, ContentValues)}.
+     *
+     * Values are only inflated lazily for clients in the same process. For other processes,
+     * results that include a compressed column are copied a cell at a time into a new
+     * CursorWindow on this side of the binder, instead of sharing SQLiteCursor's window,
+     * and all compressed values in the window are inflated and sent as full text.
+     * Queries whose projection has no compressed columns are returned unwrapped and unaffected.
+     */
+    protected Set<String> createCompressedColumns() {
+        return Collections.emptySet();
+    }
+
+    /**
+     * Override to give the compressor a preset dictionary of strings common to the compressed
+     * values, such as JSON keys, which greatly helps short values. Changing it makes
+     * existing compressed values unreadable.
+     */
+    protected byte[] getCompressionDictionary() {
+        return null;
+    }
+
+    private boolean containsCompressedColumn(String[] columnNames) {
+        Set<String> compressedColumns = getCompressedColumns();
+        for (String columnName : columnNames) {
+            if (compressedColumns.contains(columnName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void compressValues(ContentValues values) {
+        Set<String> compressedColumns = getCompressedColumns();
+        if (compressedColumns.isEmpty()) {
+            return;
+        }
+
+        byte[] dictionary = getCompressionDictionary();
+        for (String column : compressedColumns) {
+            Object value = values.get(column);
+            if (value instanceof String) {
+                byte[] compressed = ColumnCompression.compress((String) value, dictionary);
+                // Values that do not shrink stay as TEXT
+                if (compressed != null) {
+                    values.put(column, compressed);
+                }
+            }
+        }
+    }
+
     protected final SQLiteDatabase getReadableDatabase() {
         return getDatabaseHelper().getReadableDatabase();
     }
@@ -2,11 +2,15 @@ package com.talklittle.basecontentprovider;
 
 import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
 import android.os.Build;
+import android.util.Log;
 
 public abstract class BaseDatabaseHelper extends SQLiteOpenHelper {
 
+    private static final String TAG = "BaseDatabaseHelper";
+
     public BaseDatabaseHelper(Context context, String databaseName, int databaseVersion) {
         super(context, databaseName, null, databaseVersion);
     }
@@ -20,6 +24,93 @@ public abstract class BaseDatabaseHelper extends SQLiteOpenHelper {
             // framework docs, so revert it to disabled
             db.disableWriteAheadLogging();
         }
+
+        StorageTuning tuning = getStorageTuning();
+        if (tuning != null) {
+            // A version of 0 means onCreate() is about to run, so the file is still empty and
+            // rebuilding it is cheap. Existing databases wait for migrateStorageLayout().
+            if (db.getVersion() == 0) {
+                applyStorageLayout(db, tuning);
+            }
+            applyConnectionTuning(db, tuning);
+        }
+    }
+
+    /**
+     * Override to tune SQLite storage settings, applied each time the database is opened.
+     * @return The settings, or null to keep the SQLite defaults
+     */
+    protected StorageTuning getStorageTuning() {
+        return null;
+    }
+
+    /**
+     * Rebuild an existing database with VACUUM if its page_size or auto_vacuum differs from
+     * {@link #getStorageTuning()}. New databases get them at creation without calling this.
+     *
+     * VACUUM rewrites the whole file and needs about as much free space again,
+     * so call this from a background thread, e.g. at idle.
+     * @return true if the layout matches the tuning, false if the VACUUM failed and should be retried later
+     */
+    public boolean migrateStorageLayout() {
+        StorageTuning tuning = getStorageTuning();
+        if (tuning == null) {
+            return true;
+        }
+        return applyStorageLayout(getWritableDatabase(), tuning);
+    }
+
+    private static boolean applyStorageLayout(SQLiteDatabase db, StorageTuning tuning) {
+        // page_size and auto_vacuum only take effect on an empty database, and the framework
+        // has already created android_metadata, so a change always needs a VACUUM to rebuild the file
+        Integer pageSize = tuning.getPageSizeBytes();
+        StorageTuning.AutoVacuum autoVacuum = tuning.getAutoVacuum();
+        boolean needsVacuum = false;
+        if (pageSize != null && PragmaUtils.longForPragma(db, "page_size") != pageSize) {
+            needsVacuum = true;
+        }
+        if (autoVacuum != null && PragmaUtils.longForPragma(db, "auto_vacuum") != autoVacuum.sqliteValue) {
+            PragmaUtils.execPragma(db, "PRAGMA auto_vacuum=" + autoVacuum.sqliteValue);
+            needsVacuum = true;
+        }
+        if (!needsVacuum) {
+            return true;
+        }
+        if (db.isReadOnly()) {
+            return false;
+        }
+        if (pageSize != null) {
+            // The framework resets page_size to its default on every open, and VACUUM rebuilds
+            // with whatever is set, so set it even when only auto_vacuum differs
+            PragmaUtils.execPragma(db, "PRAGMA page_size=" + pageSize);
+        }
+
+        try {
+            db.execSQL("VACUUM");
+            return true;
+        } catch (SQLiteException e) {
+            // Most likely out of disk space or busy. The database is left as it was.
+            Log.w(TAG, "VACUUM to apply page_size and auto_vacuum failed, will retry", e);
+            return false;
+        }
+    }
+
+    private static void applyConnectionTuning(SQLiteDatabase db, StorageTuning tuning) {
+        // Per-connection settings. With write-ahead logging disabled
+        // the database has a single connection, so setting them here covers it.
+        if (tuning.getMmapSizeBytes() != null) {
+            PragmaUtils.execPragma(db, "PRAGMA mmap_size=" + tuning.getMmapSizeBytes());
+        }
+        if (tuning.getCacheSizeKib() != null) {
+            // Negative cache_size is in KiB rather than pages
+            PragmaUtils.execPragma(db, "PRAGMA cache_size=-" + tuning.getCacheSizeKib());
+        }
+        if (tuning.getSynchronous() != null) {
+            PragmaUtils.execPragma(db, "PRAGMA synchronous=" + tuning.getSynchronous().name());
+        }
+        if (tuning.getTempStore() != null) {
+            PragmaUtils.execPragma(db, "PRAGMA temp_store=" + tuning.getTempStore().name());
+        }
     }
 
     @Override
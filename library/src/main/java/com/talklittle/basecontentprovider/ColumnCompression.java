@@ -0,0 +1,80 @@
+package com.talklittle.basecontentprovider;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate helpers for the compressed columns of {@link BaseContentProvider}.
+ * Compressed values are stored as BLOBs; values left uncompressed stay TEXT, which
+ * is how readers tell them apart.
+ */
+final class ColumnCompression {
+
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private ColumnCompression() {
+    }
+
+    /**
+     * @return The deflated UTF-8 bytes of value, or null if compressing would not make it smaller
+     */
+    static byte[] compress(String value, byte[] dictionary) {
+        byte[] input = value.getBytes(UTF_8);
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            if (dictionary != null) {
+                deflater.setDictionary(dictionary);
+            }
+            deflater.setInput(input);
+            deflater.finish();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(input.length / 2 + 1);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                output.write(buffer, 0, count);
+                if (output.size() >= input.length) {
+                    return null;
+                }
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decompress(byte[] compressed, byte[] dictionary) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream(compressed.length * 4);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0) {
+                    if (inflater.needsDictionary()) {
+                        if (dictionary == null) {
+                            throw new IllegalStateException("Compressed value requires a dictionary");
+                        }
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.needsInput()) {
+                        throw new IllegalStateException("Compressed value is truncated");
+                    }
+                }
+                output.write(buffer, 0, count);
+            }
+            return new String(output.toByteArray(), UTF_8);
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed value is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,41 @@
+package com.talklittle.basecontentprovider;
+
+/**
+ * Outcome of one {@link BaseContentProvider#compact()} pass.
+ */
+public class CompactionResult {
+
+    private final int mDeletedRows;
+    private final long mReclaimedBytes;
+    private final long mElapsedMillis;
+
+    public CompactionResult(int deletedRows, long reclaimedBytes, long elapsedMillis) {
+        mDeletedRows = deletedRows;
+        mReclaimedBytes = reclaimedBytes;
+        mElapsedMillis = elapsedMillis;
+    }
+
+    public int getDeletedRows() {
+        return mDeletedRows;
+    }
+
+    /**
+     * Bytes the database file shrank by. Stays 0 unless the database uses
+     * incremental auto_vacuum; otherwise freed pages are only reused, not returned.
+     */
+    public long getReclaimedBytes() {
+        return mReclaimedBytes;
+    }
+
+    public long getElapsedMillis() {
+        return mElapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactionResult{deletedRows=" + mDeletedRows
+                + ", reclaimedBytes=" + mReclaimedBytes
+                + ", elapsedMillis=" + mElapsedMillis + '}';
+    }
+
+}
@@ -0,0 +1,75 @@
+package com.talklittle.basecontentprovider;
+
+import android.database.CharArrayBuffer;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+
+import java.util.Set;
+
+/**
+ * Wraps a query result so that compressed columns read back as their original text.
+ * Values are only inflated when the column is actually read, so rows that are
+ * skipped or whose compressed columns are not needed cost nothing extra.
+ *
+ * That only holds in-process. This is a plain CursorWrapper, so a cursor sent to another process
+ * is copied into a new CursorWindow through getType() and getString() for every cell, rather
+ * than sharing the wrapped SQLiteCursor's window, and every compressed value is inflated.
+ */
+class DecompressingCursor extends CursorWrapper {
+
+    private final boolean[] mCompressedColumns;
+    private final byte[] mDictionary;
+
+    DecompressingCursor(Cursor cursor, Set<String> compressedColumnNames, byte[] dictionary) {
+        super(cursor);
+        String[] columnNames = cursor.getColumnNames();
+        mCompressedColumns = new boolean[columnNames.length];
+        for (int i = 0; i < columnNames.length; i++) {
+            mCompressedColumns[i] = compressedColumnNames.contains(columnNames[i]);
+        }
+        mDictionary = dictionary;
+    }
+
+    /**
+     * @return true if the value in the column is stored compressed. Uncompressed values are TEXT.
+     */
+    private boolean isCompressed(int columnIndex) {
+        return mCompressedColumns[columnIndex] && super.getType(columnIndex) == FIELD_TYPE_BLOB;
+    }
+
+    @Override
+    public String getString(int columnIndex) {
+        if (isCompressed(columnIndex)) {
+            return ColumnCompression.decompress(super.getBlob(columnIndex), mDictionary);
+        }
+        return super.getString(columnIndex);
+    }
+
+    @Override
+    public void copyStringToBuffer(int columnIndex, CharArrayBuffer buffer) {
+        if (isCompressed(columnIndex)) {
+            char[] chars = getString(columnIndex).toCharArray();
+            buffer.data = chars;
+            buffer.sizeCopied = chars.length;
+        } else {
+            super.copyStringToBuffer(columnIndex, buffer);
+        }
+    }
+
+    @Override
+    public byte[] getBlob(int columnIndex) {
+        if (isCompressed(columnIndex)) {
+            return getString(columnIndex).getBytes(ColumnCompression.UTF_8);
+        }
+        return super.getBlob(columnIndex);
+    }
+
+    @Override
+    public int getType(int columnIndex) {
+        if (isCompressed(columnIndex)) {
+            return FIELD_TYPE_STRING;
+        }
+        return super.getType(columnIndex);
+    }
+
+}
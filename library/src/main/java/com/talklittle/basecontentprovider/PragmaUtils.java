@@ -0,0 +1,39 @@
+package com.talklittle.basecontentprovider;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+final class PragmaUtils {
+
+    private PragmaUtils() {
+    }
+
+    /**
+     * Run a PRAGMA to completion. Some PRAGMAs return rows, which makes
+     * {@link SQLiteDatabase#execSQL(String)} throw, and some (like incremental_vacuum)
+     * only do one step of work per row, so the result is always fully stepped through.
+     */
+    static void execPragma(SQLiteDatabase db, String sql) {
+        Cursor c = db.rawQuery(sql, null);
+        try {
+            //noinspection StatementWithEmptyBody
+            while (c.moveToNext()) {
+            }
+        } finally {
+            c.close();
+        }
+    }
+
+    static long longForPragma(SQLiteDatabase db, String pragma) {
+        return DatabaseUtils.longForQuery(db, "PRAGMA " + pragma, null);
+    }
+
+    /**
+     * @return Size of the main database file in bytes, excluding any journal
+     */
+    static long getDatabaseSizeBytes(SQLiteDatabase db) {
+        return longForPragma(db, "page_count") * longForPragma(db, "page_size");
+    }
+
+}
@@ -0,0 +1,421 @@
+package com.talklittle.basecontentprovider;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Read-only cursor that runs a query one page at a time, loading the next pages on a
+ * background executor as the reader nears the end of the current page. This keeps the
+ * reader from stalling while a whole CursorWindow is filled synchronously.
+ *
+ * At most one current page plus {@code maxPrefetchedPages} are held in memory.
+ * Pages behind the reader are closed, so scrolling backwards reloads them synchronously.
+ *
+ * Each page is a separate LIMIT/OFFSET query, so rows written while scrolling can shift between
+ * pages, and deep pages cost more to skip to. Best suited to lists that requery on change anyway.
+ * The query's ORDER BY must be unique, e.g. end with _id, or rows that tie can be repeated or
+ * skipped between pages.
+ *
+ * The count is taken when the cursor is created. If rows are deleted before a later page is
+ * loaded, that page comes back short and the count shrinks to match: moving into the missing
+ * rows returns false and leaves the cursor after the last row, as at the end of the data.
+ */
+public class PrefetchingCursor extends CursorWrapper {
+
+    public interface OnCloseListener {
+        void onClose(PrefetchingCursor cursor);
+    }
+
+    private final PagedCursor mPagedCursor;
+    private final OnCloseListener mOnCloseListener;
+
+    /**
+     * @param sql The complete SELECT statement, e.g. from
+     *            {@link android.database.sqlite.SQLiteQueryBuilder#buildQuery}
+     * @param pageSize Rows per page. Keep a page small enough to fit in one CursorWindow.
+     * @param maxPrefetchedPages Pages to load ahead of the current one
+     * @param executor Executor the pages are loaded on
+     * @param onCloseListener Notified when the cursor is closed, e.g. to collect the metrics; may be null
+     */
+    public PrefetchingCursor(SQLiteDatabase db, String sql, String[] selectionArgs,
+                             int pageSize, int maxPrefetchedPages, ExecutorService executor,
+                             OnCloseListener onCloseListener) {
+        this(new PagedCursor(db, sql, selectionArgs, pageSize, maxPrefetchedPages, executor), onCloseListener);
+    }
+
+    private PrefetchingCursor(PagedCursor pagedCursor, OnCloseListener onCloseListener) {
+        super(pagedCursor);
+        mPagedCursor = pagedCursor;
+        mOnCloseListener = onCloseListener;
+    }
+
+    // The paging happens in PagedCursor, an AbstractCursor. Its moves are final and leave the
+    // position at -1 when onMove() fails, so a page that comes back short is turned into the
+    // normal end-of-data state here instead.
+
+    @Override
+    public boolean move(int offset) {
+        return endIfCountShrank(super.move(offset));
+    }
+
+    @Override
+    public boolean moveToPosition(int position) {
+        return endIfCountShrank(super.moveToPosition(position));
+    }
+
+    @Override
+    public boolean moveToFirst() {
+        return endIfCountShrank(super.moveToFirst());
+    }
+
+    @Override
+    public boolean moveToLast() {
+        return endIfCountShrank(super.moveToLast());
+    }
+
+    @Override
+    public boolean moveToNext() {
+        return endIfCountShrank(super.moveToNext());
+    }
+
+    @Override
+    public boolean moveToPrevious() {
+        return endIfCountShrank(super.moveToPrevious());
+    }
+
+    private boolean endIfCountShrank(boolean moved) {
+        if (mPagedCursor.clearCountShrank() && !moved) {
+            // Moving to the count itself sets the position after the last row without calling onMove()
+            mPagedCursor.moveToPosition(mPagedCursor.getCount());
+        }
+        return moved;
+    }
+
+    @Override
+    public void close() {
+        if (isClosed()) {
+            return;
+        }
+        super.close();
+
+        if (mOnCloseListener != null) {
+            mOnCloseListener.onClose(this);
+        }
+    }
+
+    /**
+     * @return Page switches where the page had already been prefetched
+     */
+    public int getPrefetchHitCount() {
+        return mPagedCursor.mPrefetchHitCount;
+    }
+
+    /**
+     * @return Page switches that had to wait for a page still loading, or load it synchronously
+     */
+    public int getPrefetchMissCount() {
+        return mPagedCursor.mPrefetchMissCount;
+    }
+
+    /**
+     * @return Total time the reader spent waiting on page loads
+     */
+    public long getStallNanos() {
+        return mPagedCursor.mStallNanos;
+    }
+
+    /**
+     * @return Total load time that was spent in the background instead of on the reader's thread
+     */
+    public long getStallNanosAvoided() {
+        return mPagedCursor.mStallNanosAvoided;
+    }
+
+    private static class PagedCursor extends AbstractCursor {
+
+        private static class Page {
+            final int index;
+            final Cursor cursor;
+            final long loadNanos;
+
+            Page(int index, Cursor cursor, long loadNanos) {
+                this.index = index;
+                this.cursor = cursor;
+                this.loadNanos = loadNanos;
+            }
+        }
+
+        private final SQLiteDatabase mDb;
+        private final String mSql;
+        private final String[] mSelectionArgs;
+        private final int mPageSize;
+        private final int mMaxPrefetchedPages;
+        private final ExecutorService mExecutor;
+
+        private int mCount;
+        private final String[] mColumnNames;
+        private Page mCurrentPage;
+        private final Map<Integer, Future<Page>> mPrefetchedPages = new HashMap<Integer, Future<Page>>();
+
+        private int mPrefetchHitCount;
+        private int mPrefetchMissCount;
+        private long mStallNanos;
+        private long mStallNanosAvoided;
+        private boolean mCountShrank;
+
+        PagedCursor(SQLiteDatabase db, String sql, String[] selectionArgs,
+                    int pageSize, int maxPrefetchedPages, ExecutorService executor) {
+            if (pageSize <= 0) {
+                throw new IllegalArgumentException("pageSize must be positive: " + pageSize);
+            }
+            mDb = db;
+            mSql = sql;
+            mSelectionArgs = selectionArgs;
+            mPageSize = pageSize;
+            mMaxPrefetchedPages = maxPrefetchedPages;
+            mExecutor = executor;
+
+            mCount = (int) DatabaseUtils.longForQuery(db, "SELECT COUNT(*) FROM (" + sql + ")", selectionArgs);
+
+            // The reader almost always starts at the top, so load it now and take the column names from it
+            mCurrentPage = loadPage(0);
+            mColumnNames = mCurrentPage.cursor.getColumnNames();
+            clampCount(mCurrentPage);
+        }
+
+        private Page loadPage(int index) {
+            long startTime = System.nanoTime();
+            Cursor cursor = mDb.rawQuery("SELECT * FROM (" + mSql + ") LIMIT " + mPageSize
+                    + " OFFSET " + ((long) index * mPageSize), mSelectionArgs);
+            // Force the query to run and fill its window now, rather than on first access
+            cursor.getCount();
+            return new Page(index, cursor, System.nanoTime() - startTime);
+        }
+
+        /**
+         * Shrink the count if rows were deleted since it was taken and the page came back short.
+         */
+        private void clampCount(Page page) {
+            int pageStart = page.index * mPageSize;
+            int expectedRows = Math.min(mPageSize, mCount - pageStart);
+            int rows = page.cursor.getCount();
+            if (rows < expectedRows) {
+                mCount = pageStart + rows;
+                mCountShrank = true;
+            }
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            if (isClosed()) {
+                return false;
+            }
+
+            int pageIndex = newPosition / mPageSize;
+            if (mCurrentPage.index != pageIndex) {
+                switchToPage(pageIndex);
+            }
+            if (newPosition >= mCount) {
+                return false;
+            }
+
+            int positionInPage = newPosition - pageIndex * mPageSize;
+            if (positionInPage >= mPageSize / 2) {
+                prefetchAfter(pageIndex);
+            }
+            return mCurrentPage.cursor.moveToPosition(positionInPage);
+        }
+
+        private void switchToPage(int pageIndex) {
+            Page page;
+            Future<Page> future = mPrefetchedPages.remove(pageIndex);
+            if (future != null) {
+                boolean wasDone = future.isDone();
+                long startTime = System.nanoTime();
+                page = getPage(future);
+                long stallNanos = System.nanoTime() - startTime;
+                if (wasDone) {
+                    mPrefetchHitCount++;
+                } else {
+                    mPrefetchMissCount++;
+                    mStallNanos += stallNanos;
+                }
+                mStallNanosAvoided += Math.max(0, page.loadNanos - stallNanos);
+            } else {
+                page = loadPage(pageIndex);
+                mPrefetchMissCount++;
+                mStallNanos += page.loadNanos;
+            }
+
+            if (mCurrentPage != null) {
+                mCurrentPage.cursor.close();
+            }
+            mCurrentPage = page;
+            clampCount(page);
+
+            discardPrefetchedPagesOutside(pageIndex + 1, pageIndex + mMaxPrefetchedPages);
+        }
+
+        private void prefetchAfter(int pageIndex) {
+            int lastPageIndex = (mCount - 1) / mPageSize;
+            for (int i = pageIndex + 1; i <= pageIndex + mMaxPrefetchedPages && i <= lastPageIndex; i++) {
+                if (!mPrefetchedPages.containsKey(i)) {
+                    final int index = i;
+                    mPrefetchedPages.put(i, mExecutor.submit(new Callable<Page>() {
+                        @Override
+                        public Page call() {
+                            return loadPage(index);
+                        }
+                    }));
+                }
+            }
+        }
+
+        private void discardPrefetchedPagesOutside(int firstIndex, int lastIndex) {
+            ArrayList<Integer> discarded = new ArrayList<Integer>();
+            for (Integer index : mPrefetchedPages.keySet()) {
+                if (index < firstIndex || index > lastIndex) {
+                    discarded.add(index);
+                }
+            }
+            for (Integer index : discarded) {
+                discardPage(mPrefetchedPages.remove(index));
+            }
+        }
+
+        private void discardPage(final Future<Page> future) {
+            if (future.cancel(false)) {
+                return;
+            }
+            // Already loading or loaded; close its cursor once available without blocking the reader
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        future.get().cursor.close();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        // Nothing was opened
+                    }
+                }
+            });
+        }
+
+        private static Page getPage(Future<Page> future) {
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return future.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        }
+                        throw new RuntimeException(cause);
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+            if (isClosed()) {
+                return;
+            }
+            super.close();
+
+            for (Future<Page> future : mPrefetchedPages.values()) {
+                discardPage(future);
+            }
+            mPrefetchedPages.clear();
+            if (mCurrentPage != null) {
+                mCurrentPage.cursor.close();
+                mCurrentPage = null;
+            }
+        }
+
+        /**
+         * @return true if the count shrank since the last call
+         */
+        boolean clearCountShrank() {
+            boolean countShrank = mCountShrank;
+            mCountShrank = false;
+            return countShrank;
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return mColumnNames;
+        }
+
+        @Override
+        public String getString(int column) {
+            return mCurrentPage.cursor.getString(column);
+        }
+
+        @Override
+        public short getShort(int column) {
+            return mCurrentPage.cursor.getShort(column);
+        }
+
+        @Override
+        public int getInt(int column) {
+            return mCurrentPage.cursor.getInt(column);
+        }
+
+        @Override
+        public long getLong(int column) {
+            return mCurrentPage.cursor.getLong(column);
+        }
+
+        @Override
+        public float getFloat(int column) {
+            return mCurrentPage.cursor.getFloat(column);
+        }
+
+        @Override
+        public double getDouble(int column) {
+            return mCurrentPage.cursor.getDouble(column);
+        }
+
+        @Override
+        public byte[] getBlob(int column) {
+            return mCurrentPage.cursor.getBlob(column);
+        }
+
+        @Override
+        public int getType(int column) {
+            return mCurrentPage.cursor.getType(column);
+        }
+
+        @Override
+        public boolean isNull(int column) {
+            return mCurrentPage.cursor.isNull(column);
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+package com.talklittle.basecontentprovider;
+
+/**
+ * Declares how long rows are kept in a {@link BaseContentProvider} table.
+ * Returned from {@link BaseContentProvider#getRetentionPolicy()} and enforced by
+ * {@link BaseContentProvider#compact()}.
+ */
+public class RetentionPolicy {
+
+    public static final long NO_MAX_AGE = -1;
+    public static final int NO_MAX_ROW_COUNT = -1;
+
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_IDLE_DELAY_MILLIS = 30 * 1000;
+
+    private final String mTimestampColumn;
+    private final long mMaxAgeMillis;
+    private final int mMaxRowCount;
+    private final int mBatchSize;
+    private final long mIdleDelayMillis;
+
+    /**
+     * Index timestampColumn. Each batch finds the next expired rows through that index, and
+     * trimming to maxRowCount looks up the cutoff row through it. Without the index, every
+     * batch and the cutoff lookup scan the whole table.
+     *
+     * @param timestampColumn Column holding the creation time in milliseconds, typically
+     *                        stamped by setDefaultRequiredColumnValues(). Also used to pick
+     *                        the oldest rows when trimming to maxRowCount.
+     * @param maxAgeMillis Rows older than this are deleted, or {@link #NO_MAX_AGE}
+     * @param maxRowCount Oldest rows beyond this count are deleted, or {@link #NO_MAX_ROW_COUNT}
+     */
+    public RetentionPolicy(String timestampColumn, long maxAgeMillis, int maxRowCount) {
+        this(timestampColumn, maxAgeMillis, maxRowCount, DEFAULT_BATCH_SIZE, DEFAULT_IDLE_DELAY_MILLIS);
+    }
+
+    /**
+     * @param batchSize Maximum rows deleted per transaction, so writers are never blocked for long
+     * @param idleDelayMillis How long the provider must go without writes before compacting
+     */
+    public RetentionPolicy(String timestampColumn, long maxAgeMillis, int maxRowCount,
+                           int batchSize, long idleDelayMillis) {
+        if (timestampColumn == null) {
+            throw new IllegalArgumentException("timestampColumn must not be null");
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        mTimestampColumn = timestampColumn;
+        mMaxAgeMillis = maxAgeMillis;
+        mMaxRowCount = maxRowCount;
+        mBatchSize = batchSize;
+        mIdleDelayMillis = idleDelayMillis;
+    }
+
+    public String getTimestampColumn() {
+        return mTimestampColumn;
+    }
+
+    public long getMaxAgeMillis() {
+        return mMaxAgeMillis;
+    }
+
+    public int getMaxRowCount() {
+        return mMaxRowCount;
+    }
+
+    public int getBatchSize() {
+        return mBatchSize;
+    }
+
+    public long getIdleDelayMillis() {
+        return mIdleDelayMillis;
+    }
+
+    public boolean hasMaxAge() {
+        return mMaxAgeMillis >= 0;
+    }
+
+    public boolean hasMaxRowCount() {
+        return mMaxRowCount >= 0;
+    }
+
+}
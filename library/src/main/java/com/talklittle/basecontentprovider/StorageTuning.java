@@ -0,0 +1,110 @@
+package com.talklittle.basecontentprovider;
+
+/**
+ * SQLite storage settings applied by {@link BaseDatabaseHelper} when the database is configured.
+ * Settings left unset keep the SQLite defaults.
+ */
+public class StorageTuning {
+
+    public enum Synchronous {
+        OFF, NORMAL, FULL
+    }
+
+    public enum TempStore {
+        DEFAULT, FILE, MEMORY
+    }
+
+    public enum AutoVacuum {
+        NONE(0), FULL(1), INCREMENTAL(2);
+
+        /** The value SQLite uses for this mode in PRAGMA auto_vacuum */
+        public final int sqliteValue;
+
+        AutoVacuum(int sqliteValue) {
+            this.sqliteValue = sqliteValue;
+        }
+    }
+
+    private Long mMmapSizeBytes;
+    private Integer mCacheSizeKib;
+    private Integer mPageSizeBytes;
+    private Synchronous mSynchronous;
+    private TempStore mTempStore;
+    private AutoVacuum mAutoVacuum;
+
+    /**
+     * Maximum bytes of the database file to memory-map for reads. 0 disables memory-mapping.
+     */
+    public StorageTuning setMmapSizeBytes(long mmapSizeBytes) {
+        mMmapSizeBytes = mmapSizeBytes;
+        return this;
+    }
+
+    /**
+     * Page cache size per connection.
+     */
+    public StorageTuning setCacheSizeKib(int cacheSizeKib) {
+        if (cacheSizeKib < 0) {
+            throw new IllegalArgumentException("Invalid cache size " + cacheSizeKib);
+        }
+        mCacheSizeKib = cacheSizeKib;
+        return this;
+    }
+
+    /**
+     * A power of two between 512 and 65536. Applied when the database is created;
+     * existing databases need {@link BaseDatabaseHelper#migrateStorageLayout()}.
+     */
+    public StorageTuning setPageSizeBytes(int pageSizeBytes) {
+        if (pageSizeBytes < 512 || pageSizeBytes > 65536 || (pageSizeBytes & (pageSizeBytes - 1)) != 0) {
+            throw new IllegalArgumentException("Invalid page size " + pageSizeBytes);
+        }
+        mPageSizeBytes = pageSizeBytes;
+        return this;
+    }
+
+    public StorageTuning setSynchronous(Synchronous synchronous) {
+        mSynchronous = synchronous;
+        return this;
+    }
+
+    public StorageTuning setTempStore(TempStore tempStore) {
+        mTempStore = tempStore;
+        return this;
+    }
+
+    /**
+     * Use {@link AutoVacuum#INCREMENTAL} to let {@link BaseContentProvider#compact()} shrink the file.
+     * Applied when the database is created; existing databases need
+     * {@link BaseDatabaseHelper#migrateStorageLayout()}.
+     */
+    public StorageTuning setAutoVacuum(AutoVacuum autoVacuum) {
+        mAutoVacuum = autoVacuum;
+        return this;
+    }
+
+    public Long getMmapSizeBytes() {
+        return mMmapSizeBytes;
+    }
+
+    public Integer getCacheSizeKib() {
+        return mCacheSizeKib;
+    }
+
+    public Integer getPageSizeBytes() {
+        return mPageSizeBytes;
+    }
+
+    public Synchronous getSynchronous() {
+        return mSynchronous;
+    }
+
+    public TempStore getTempStore() {
+        return mTempStore;
+    }
+
+    public AutoVacuum getAutoVacuum() {
+        return mAutoVacuum;
+    }
+
+}